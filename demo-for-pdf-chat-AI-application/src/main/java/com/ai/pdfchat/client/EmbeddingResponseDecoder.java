@@ -0,0 +1,116 @@
+package com.ai.pdfchat.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.core.io.doubleparser.JavaFloatParser;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Incremental decoder for Ollama embed responses. Bytes are fed as they arrive and the first
+ * vector under an "embedding" or "embeddings" field is parsed straight into a float[], without
+ * building a JSON tree, boxing the values or creating a String per number. Handles the same
+ * shapes as before: {"embedding":[..]}, {"embeddings":[[..]]} / {"embeddings":[..]} and
+ * {"data":[{"embedding":[..]}]}.
+ *
+ * Use one instance per response. {@link #result()} closes the parser, which hands its buffers
+ * back to Jackson's recycler. A decoder abandoned mid-body (error, timeout) is simply garbage
+ * collected, so nothing ever closes the parser while a buffer is still being parsed.
+ */
+class EmbeddingResponseDecoder {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final int INITIAL_CAPACITY = 1024; // mxbai-embed-large dimension
+
+    private enum State { SEEK, EXPECT_ARRAY, IN_VECTOR, DONE, FAILED }
+
+    private final JsonParser parser;
+    private final ByteBufferFeeder feeder;
+    private State state = State.SEEK;
+    private float[] values = new float[INITIAL_CAPACITY];
+    private int size;
+
+    EmbeddingResponseDecoder() {
+        try {
+            this.parser = JSON.createNonBlockingByteBufferParser();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /** Consume one buffer of the response body. The caller remains responsible for releasing it. */
+    EmbeddingResponseDecoder feed(DataBuffer buffer) {
+        try (DataBuffer.ByteBufferIterator it = buffer.readableByteBuffers()) {
+            while (it.hasNext()) feed(it.next());
+        }
+        return this;
+    }
+
+    void feed(ByteBuffer bytes) {
+        if (state == State.DONE || state == State.FAILED) return; // ignore the rest of the body
+        try {
+            feeder.feedInput(bytes);
+            drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Signal end of input, close the parser and return the vector, or an empty array if the body
+     * held no embedding. The array is only copied when the dimension differs from the initial
+     * capacity.
+     */
+    float[] result() {
+        try {
+            if (state != State.DONE && state != State.FAILED) {
+                feeder.endOfInput();
+                drain();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            try { parser.close(); } catch (IOException ignored) {}
+        }
+        if (state != State.DONE) return new float[0];
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    private void drain() throws IOException {
+        JsonToken t;
+        while (state != State.DONE && state != State.FAILED
+                && (t = parser.nextToken()) != null && t != JsonToken.NOT_AVAILABLE) {
+            switch (state) {
+                case SEEK -> {
+                    if (t == JsonToken.FIELD_NAME) {
+                        String name = parser.currentName();
+                        if ("embedding".equals(name) || "embeddings".equals(name)) state = State.EXPECT_ARRAY;
+                    }
+                }
+                case EXPECT_ARRAY -> state = t == JsonToken.START_ARRAY ? State.IN_VECTOR : State.SEEK;
+                case IN_VECTOR -> {
+                    if (t == JsonToken.VALUE_NUMBER_FLOAT || t == JsonToken.VALUE_NUMBER_INT) {
+                        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+                        // straight from the parser's char buffer: getFloatValue() would build a String per value
+                        values[size++] = JavaFloatParser.parseFloat(
+                                parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                    } else if (t == JsonToken.START_ARRAY && size == 0) {
+                        // array-of-arrays: the first inner array is the vector
+                    } else if (t == JsonToken.END_ARRAY) {
+                        state = size > 0 ? State.DONE : State.SEEK;
+                    } else {
+                        state = State.FAILED;
+                    }
+                }
+                default -> { }
+            }
+        }
+    }
+}
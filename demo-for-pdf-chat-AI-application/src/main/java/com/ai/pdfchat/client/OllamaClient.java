@@ -1,10 +1,10 @@
 package com.ai.pdfchat.client;
 
 import com.ai.pdfchat.config.OllamaProperties;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
@@ -18,9 +18,11 @@ import java.util.regex.Pattern;
 @Slf4j
 @Component
 public class OllamaClient {
+    private static final Pattern ANSWER_MARKER = Pattern.compile("(?is)Answer:\\s*(.+)"); // DOTALL + case-insensitive
+
     private final WebClient webClient;
-    private final ObjectMapper mapper = new ObjectMapper();
     private final String genModel; // inject via properties
+    private final String embedModel;
 
     // configurable
     private final Duration GENERATE_TIMEOUT = Duration.ofSeconds(300);
@@ -30,6 +32,7 @@ public class OllamaClient {
     public OllamaClient(OllamaProperties props, WebClient.Builder webClientBuilder) {
         this.webClient = webClientBuilder.baseUrl(props.getBaseUrl()).build();
         this.genModel = props.getGenModel();
+        this.embedModel = props.getEmbedModel();
     }
 
     /**
@@ -186,8 +189,7 @@ public class OllamaClient {
         if (modelResponseText == null) return "";
 
         // 1) prefer content after "Answer:" marker
-        Pattern p = Pattern.compile("(?is)Answer:\\s*(.+)"); // DOTALL + case-insensitive
-        Matcher m = p.matcher(modelResponseText);
+        Matcher m = ANSWER_MARKER.matcher(modelResponseText);
         if (m.find()) {
             String after = m.group(1).trim();
             // if model returned only the label, fallback to full text
@@ -202,7 +204,7 @@ public class OllamaClient {
 
         // 2) If response is very short or just a token, treat as incomplete
         String trimmed = modelResponseText.trim();
-        if (trimmed.split("\\s+").length <= 2) {
+        if (!hasMoreWordsThan(trimmed, 2)) {
             return "I couldn't generate a complete answer. Please try again.";
         }
 
@@ -210,63 +212,67 @@ public class OllamaClient {
         return trimmed;
     }
 
+    /** Same as {@code text.split("\\s+").length > limit}, without building the array. */
+    private static boolean hasMoreWordsThan(String text, int limit) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') { // same set as regex \s
+                inWord = false;
+            } else if (!inWord) {
+                inWord = true;
+                if (++words > limit) return true;
+            }
+        }
+        return false;
+    }
+
     /** Make OpenAI-compatible body for fallback endpoint */
     private Map<String, Object> makeOpenAIBody(String prompt) {
         Map<String, Object> message = Map.of("role", "user", "content", prompt);
         return Map.of("model", genModel, "messages", List.of(message), "max_tokens", 1024);
     }
 
-    public List<Double> embed(String text) {
+    /** Configured embedding model, i.e. the one search should end up using. */
+    public String getEmbedModel() {
+        return embedModel;
+    }
+
+    /** Returns the embedding of {@code text}, or null if Ollama failed or returned no vector. */
+    public float[] embed(String text, String model) {
         if (text == null) return null;
-        Map<String,Object> body = Map.of("model", "mxbai-embed-large", "input", text);
+        Map<String,Object> body = Map.of("model", model, "input", text);
 
-        JsonNode resp;
+        float[] emb;
         try {
-            resp = webClient.post()
+            // decode straight off the response buffers, no intermediate JsonNode/List<Double>;
+            // every buffer is released as soon as it is fed, whatever happens afterwards
+            emb = webClient.post()
                     .uri("/api/embed")
                     .bodyValue(body)
                     .retrieve()
-                    .bodyToMono(JsonNode.class)
+                    .bodyToFlux(DataBuffer.class)
+                    .reduceWith(EmbeddingResponseDecoder::new, (decoder, buf) -> {
+                        try {
+                            return decoder.feed(buf);
+                        } finally {
+                            DataBufferUtils.release(buf);
+                        }
+                    })
+                    .map(EmbeddingResponseDecoder::result)
                     .block(Duration.ofSeconds(10)); // avoid infinite block
         } catch (Exception ex) {
             log.error("Ollama embed request failed: {}", ex.getMessage(), ex);
             return null;
         }
 
-        if (resp == null) {
-            log.error("Ollama embed returned null response for text len={}", text.length());
+        if (emb == null || emb.length == 0) {
+            log.error("Unexpected or empty embed response from {} for text len={}", model, text.length());
             return null;
         }
 
-        // log raw response once for debugging (comment out later)
-        log.debug("Raw Ollama embed response: {}", resp.toString());
-
-        // handle common response shapes
-        JsonNode embNode = null;
-        if (resp.has("embedding") && resp.get("embedding").isArray()) {
-            embNode = resp.get("embedding");
-        } else if (resp.has("embeddings") && resp.get("embeddings").isArray()) {
-            // embeddings might be array-of-arrays
-            JsonNode arr = resp.get("embeddings");
-            if (arr.size() > 0 && arr.get(0).isArray()) embNode = arr.get(0);
-            else embNode = arr;
-        } else if (resp.has("data") && resp.get("data").isArray()) {
-            // other formats sometimes use data: [{ embedding: [...] }]
-            JsonNode d0 = resp.get("data").get(0);
-            if (d0 != null && d0.has("embedding")) embNode = d0.get("embedding");
-        }
-
-        if (embNode == null || !embNode.isArray()) {
-            log.error("Unexpected embed response shape; resp={}", resp.toString());
-            return null;
-        }
-
-        // convert to List<Double>
-        try {
-            return mapper.convertValue(embNode, new TypeReference<List<Double>>() {});
-        } catch (Exception e) {
-            log.error("Failed to convert embedding node to List<Double>: {}", e.getMessage(), e);
-            return null;
-        }
+        log.debug("Ollama embed returned dim={} for text len={}", emb.length, text.length());
+        return emb;
     }
 }
@@ -0,0 +1,14 @@
+package com.ai.pdfchat.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "rag.ingest")
+@Data
+public class IngestProperties {
+    private int extractThreads = Runtime.getRuntime().availableProcessors();
+    private int pagesPerRange = 50; // minimum pages per range; smaller documents are extracted on the request thread
+
+}
@@ -0,0 +1,17 @@
+package com.ai.pdfchat.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "rag.reembed")
+@Data
+public class ReembedProperties {
+    private boolean enabled = true;
+    private int batchSize = 100;
+    private double maxEmbedsPerSecond = 5.0; // keep headroom for live ingest/ask traffic
+    private long intervalMs = 5000;
+    private int maxAttempts = 3;             // a chunk failing this often is skipped and logged
+
+}
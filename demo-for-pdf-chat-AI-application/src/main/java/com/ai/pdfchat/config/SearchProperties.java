@@ -0,0 +1,14 @@
+package com.ai.pdfchat.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "rag.search")
+@Data
+public class SearchProperties {
+    private int probes = 10;       // ivfflat lists scanned first for tenant-filtered searches
+    private int maxProbes = 100;   // iterative scan keeps probing up to this many lists to fill top-k
+
+}
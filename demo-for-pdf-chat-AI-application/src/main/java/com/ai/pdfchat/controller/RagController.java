@@ -25,9 +25,10 @@ public class RagController {
 
 
     @PostMapping("/ingest")
-    public ResponseEntity<?> ingestPdf(@ModelAttribute("file") MultipartFile file) throws IOException {
-        ingestService.ingest(file);
-        return ResponseEntity.ok(Map.of("status", "ingested"));
+    public ResponseEntity<?> ingestPdf(@ModelAttribute("file") MultipartFile file,
+                                       @RequestParam(value = "tenantId", required = false) String tenantId) throws IOException {
+        String documentId = ingestService.ingest(file, tenantId);
+        return ResponseEntity.ok(Map.of("status", "ingested", "documentId", documentId));
     }
 
 
@@ -37,7 +38,7 @@ public class RagController {
             return ResponseEntity.badRequest().body(Map.of("error","question is required"));
         }
         try {
-            String ans = ragService.answerQuestion(req.getQuestion());
+            String ans = ragService.answerQuestion(req.getQuestion(), req.getTenantId(), req.getDocumentIds());
             return ResponseEntity.ok(Map.of("answer", ans));
         } catch (IllegalStateException e) {
             return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
@@ -2,7 +2,11 @@ package com.ai.pdfchat.model;
 
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 public class AskRequest {
     private String question;
+    private String tenantId;          // optional: search only this tenant's partition
+    private List<String> documentIds; // optional: search only these documents
 }
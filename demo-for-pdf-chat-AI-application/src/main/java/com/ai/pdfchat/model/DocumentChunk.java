@@ -18,6 +18,9 @@ public class DocumentChunk {
     private String sourceFilename;
     private Integer chunkIndex;
 
+    private String tenantId;
+    private String documentId;
+
 
     @Column(columnDefinition = "text")
     private String content;
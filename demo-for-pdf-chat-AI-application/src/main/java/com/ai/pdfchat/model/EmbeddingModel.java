@@ -0,0 +1,23 @@
+package com.ai.pdfchat.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Row of the embedding_models registry: one embedding model and the table holding its vectors.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingModel {
+    public static final String ACTIVE = "ACTIVE";
+    public static final String BACKFILLING = "BACKFILLING";
+    public static final String RETIRED = "RETIRED";
+
+    private String model;
+    private Integer dimension;
+    private String tableName;
+    private String status;
+    private Long lastChunkId;
+}
@@ -0,0 +1,238 @@
+package com.ai.pdfchat.service;
+
+import com.ai.pdfchat.model.EmbeddingModel;
+import com.ai.pdfchat.model.FloatArrayToVectorConverter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tracks which embedding model serves search and which one (if any) is being backfilled.
+ * Each model stores its vectors in its own chunk_embeddings_* table keyed by chunk id,
+ * hash partitioned on tenant_id so tenant-scoped searches only touch one partition.
+ */
+@Slf4j
+@Service
+public class EmbeddingModelRegistry {
+
+    private static final RowMapper<EmbeddingModel> ROW_MAPPER = (rs, n) -> new EmbeddingModel(
+            rs.getString("model"),
+            rs.getInt("dimension"),
+            rs.getString("table_name"),
+            rs.getString("status"),
+            rs.getLong("last_chunk_id"));
+
+    /** Must match the partitions created in schema.sql. */
+    static final int TENANT_PARTITIONS = 8;
+
+    private final JdbcTemplate jdbc;
+    private final FloatArrayToVectorConverter vectors = new FloatArrayToVectorConverter();
+
+    public EmbeddingModelRegistry(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public EmbeddingModel find(String model) {
+        List<EmbeddingModel> rows = jdbc.query(
+                "SELECT model, dimension, table_name, status, last_chunk_id FROM embedding_models WHERE model = ?",
+                ROW_MAPPER, model);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /** Model whose table currently serves similarity search, or null if none is registered. */
+    public EmbeddingModel active() {
+        return findByStatus(EmbeddingModel.ACTIVE);
+    }
+
+    public EmbeddingModel backfilling() {
+        return findByStatus(EmbeddingModel.BACKFILLING);
+    }
+
+    /** Models new chunks must be embedded with: the active one plus any model being backfilled. */
+    public List<EmbeddingModel> writeTargets() {
+        List<EmbeddingModel> targets = new ArrayList<>();
+        EmbeddingModel active = active();
+        if (active != null) targets.add(active);
+        EmbeddingModel next = backfilling();
+        if (next != null) targets.add(next);
+        return targets;
+    }
+
+    /**
+     * Register a model and create its vector table. The ANN index is created later by
+     * {@link #buildIndex(EmbeddingModel)}, once the table is populated.
+     */
+    public EmbeddingModel register(String model, int dimension, String status) {
+        String table = tableNameFor(model);
+        jdbc.execute("CREATE TABLE IF NOT EXISTS " + table + " ("
+                + "chunk_id BIGINT NOT NULL REFERENCES document_chunks(id) ON DELETE CASCADE, "
+                + "tenant_id TEXT NOT NULL, "
+                + "document_id TEXT, "
+                + "embedding vector(" + dimension + ") NOT NULL, "
+                + "PRIMARY KEY (tenant_id, chunk_id)) PARTITION BY HASH (tenant_id)");
+        for (int i = 0; i < TENANT_PARTITIONS; i++) {
+            jdbc.execute("CREATE TABLE IF NOT EXISTS " + table + "_p" + i + " PARTITION OF " + table
+                    + " FOR VALUES WITH (MODULUS " + TENANT_PARTITIONS + ", REMAINDER " + i + ")");
+        }
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_" + table + "_document ON " + table + " (document_id)");
+        jdbc.update("INSERT INTO embedding_models (model, dimension, table_name, status) VALUES (?, ?, ?, ?) "
+                + "ON CONFLICT (model) DO NOTHING", model, dimension, table, status);
+        log.info("Registered embedding model {} (dim={}, table={}, status={})", model, dimension, table, status);
+        return find(model);
+    }
+
+    /** Backfill a retired model again. Earlier failures are forgotten so every chunk gets fresh attempts. */
+    public void restartBackfill(String model) {
+        jdbc.update("DELETE FROM embedding_failures WHERE model = ?", model);
+        jdbc.update("UPDATE embedding_models SET status = ?, last_chunk_id = 0, updated_at = now() WHERE model = ?",
+                EmbeddingModel.BACKFILLING, model);
+    }
+
+    /** Stop backfilling a model that is no longer configured. Its vectors are kept for a later restart. */
+    public void cancelBackfill(String model) {
+        jdbc.update("UPDATE embedding_models SET status = ?, updated_at = now() WHERE model = ? AND status = ?",
+                EmbeddingModel.RETIRED, model, EmbeddingModel.BACKFILLING);
+    }
+
+    /**
+     * Chunks after the cursor that have no vector for this model yet, in id order. Chunks that
+     * already failed {@code maxAttempts} times are left out.
+     */
+    public List<Map<String, Object>> pendingChunks(EmbeddingModel model, int limit, int maxAttempts) {
+        String sql = "SELECT c.id, c.content, c.tenant_id, c.document_id FROM document_chunks c "
+                + "WHERE c.id > ? AND NOT EXISTS (SELECT 1 FROM " + model.getTableName() + " e "
+                + "WHERE e.tenant_id = c.tenant_id AND e.chunk_id = c.id) "
+                + "AND NOT EXISTS (SELECT 1 FROM embedding_failures f "
+                + "WHERE f.model = ? AND f.chunk_id = c.id AND f.attempts >= ?) "
+                + "ORDER BY c.id LIMIT ?";
+        return jdbc.queryForList(sql, model.getLastChunkId(), model.getModel(), maxAttempts, limit);
+    }
+
+    /**
+     * True if any chunk, regardless of the cursor, still lacks a vector for this model and has
+     * attempts left. Chunk rows commit before their vectors and concurrent ingests can commit out
+     * of id order, so a chunk whose dual-write failed may sit behind the cursor; so may a chunk
+     * whose re-embed failed and is due for another attempt.
+     */
+    public boolean hasMissingVectors(EmbeddingModel model, int maxAttempts) {
+        String sql = "SELECT EXISTS (SELECT 1 FROM document_chunks c "
+                + "WHERE NOT EXISTS (SELECT 1 FROM " + model.getTableName() + " e "
+                + "WHERE e.tenant_id = c.tenant_id AND e.chunk_id = c.id) "
+                + "AND NOT EXISTS (SELECT 1 FROM embedding_failures f "
+                + "WHERE f.model = ? AND f.chunk_id = c.id AND f.attempts >= ?))";
+        return Boolean.TRUE.equals(jdbc.queryForObject(sql, Boolean.class, model.getModel(), maxAttempts));
+    }
+
+    /** Count one more failed attempt to embed a chunk with this model. */
+    public void recordFailure(String model, long chunkId, String error) {
+        jdbc.update("INSERT INTO embedding_failures (model, chunk_id, attempts, last_error) VALUES (?, ?, 1, ?) "
+                + "ON CONFLICT (model, chunk_id) DO UPDATE SET attempts = embedding_failures.attempts + 1, "
+                + "last_error = EXCLUDED.last_error, updated_at = now()", model, chunkId, error);
+    }
+
+    /** Chunks that ran out of attempts and still have no vector for this model. */
+    public List<Map<String, Object>> permanentFailures(EmbeddingModel model, int maxAttempts) {
+        String sql = "SELECT f.chunk_id, f.attempts, f.last_error FROM embedding_failures f "
+                + "JOIN document_chunks c ON c.id = f.chunk_id "
+                + "WHERE f.model = ? AND f.attempts >= ? AND NOT EXISTS (SELECT 1 FROM " + model.getTableName() + " e "
+                + "WHERE e.tenant_id = c.tenant_id AND e.chunk_id = c.id) "
+                + "ORDER BY f.chunk_id";
+        return jdbc.queryForList(sql, model.getModel(), maxAttempts);
+    }
+
+    public void advanceCursor(String model, long lastChunkId) {
+        jdbc.update("UPDATE embedding_models SET last_chunk_id = ?, updated_at = now() WHERE model = ?",
+                lastChunkId, model);
+    }
+
+    /**
+     * Build the ANN index of a backfilled model without blocking writes: an invalid index is
+     * declared ON ONLY the partitioned parent, each partition is indexed CONCURRENTLY and then
+     * attached, which makes the parent index valid. Must run outside a transaction.
+     */
+    public void buildIndex(EmbeddingModel model) {
+        String table = model.getTableName();
+        String parentIndex = "idx_" + table;
+        Boolean valid = jdbc.queryForObject(
+                "SELECT COALESCE((SELECT indisvalid FROM pg_index WHERE indexrelid = to_regclass(?)), false)",
+                Boolean.class, parentIndex);
+        if (Boolean.TRUE.equals(valid)) return;
+
+        String using = " USING ivfflat (embedding vector_cosine_ops) WITH (lists = 100)";
+        jdbc.execute("CREATE INDEX IF NOT EXISTS " + parentIndex + " ON ONLY " + table + using);
+        for (int i = 0; i < TENANT_PARTITIONS; i++) {
+            String partitionIndex = parentIndex + "_p" + i;
+            jdbc.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + partitionIndex
+                    + " ON " + table + "_p" + i + using);
+            jdbc.execute("ALTER INDEX " + parentIndex + " ATTACH PARTITION " + partitionIndex);
+        }
+        log.info("Built ANN index {} for embedding model {}", parentIndex, model.getModel());
+    }
+
+    /**
+     * Make a backfilled and indexed model the only ACTIVE model. Only status rows change here,
+     * so the switch is atomic and brief. The previous model is retired but its table is kept,
+     * so in-flight searches stay valid.
+     */
+    @Transactional
+    public void activate(String model) {
+        if (find(model) == null) throw new IllegalStateException("Unknown embedding model " + model);
+
+        jdbc.update("UPDATE embedding_models SET status = ?, updated_at = now() WHERE status = ?",
+                EmbeddingModel.RETIRED, EmbeddingModel.ACTIVE);
+        int promoted = jdbc.update("UPDATE embedding_models SET status = ?, updated_at = now() WHERE model = ? AND status = ?",
+                EmbeddingModel.ACTIVE, model, EmbeddingModel.BACKFILLING);
+        if (promoted == 0) {
+            // cancelled meanwhile (e.g. config reverted): roll back and keep the current model
+            throw new IllegalStateException("Embedding model " + model + " is no longer backfilling");
+        }
+        log.info("Embedding model {} is now active", model);
+    }
+
+    /** returns rows written */
+    public int saveEmbedding(EmbeddingModel model, Long chunkId, String tenantId, String documentId,
+                             float[] embedding) {
+        if (embedding == null || embedding.length == 0) return 0;
+        if (embedding.length != model.getDimension()) {
+            throw new IllegalArgumentException("Embedding size " + embedding.length
+                    + " does not match dimension " + model.getDimension() + " of model " + model.getModel());
+        }
+
+        // validate elements (no NaN/Infinity)
+        for (float f : embedding) {
+            if (Float.isNaN(f) || Float.isInfinite(f)) {
+                throw new IllegalArgumentException("Embedding contains invalid value (NaN/Infinite)");
+            }
+        }
+
+        // Float.toString is locale-independent and exact for pgvector's float4 storage
+        String embLiteral = vectors.convertToDatabaseColumn(embedding);
+
+        String sql = "INSERT INTO " + model.getTableName() + " (chunk_id, tenant_id, document_id, embedding) "
+                + "VALUES (?, ?, ?, ?::vector) "
+                + "ON CONFLICT (tenant_id, chunk_id) DO UPDATE SET embedding = EXCLUDED.embedding";
+        return jdbc.update(sql, chunkId, tenantId, documentId, embLiteral);
+    }
+
+    private EmbeddingModel findByStatus(String status) {
+        List<EmbeddingModel> rows = jdbc.query(
+                "SELECT model, dimension, table_name, status, last_chunk_id FROM embedding_models WHERE status = ? "
+                        + "ORDER BY updated_at LIMIT 1",
+                ROW_MAPPER, status);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /** Table names are derived from the model name, never taken from user input. */
+    static String tableNameFor(String model) {
+        String slug = model.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "_").replaceAll("^_+|_+$", "");
+        String name = "chunk_embeddings_" + slug;
+        return name.length() > 56 ? name.substring(0, 56) : name; // Postgres limit is 63, leave room for suffixes
+    }
+}
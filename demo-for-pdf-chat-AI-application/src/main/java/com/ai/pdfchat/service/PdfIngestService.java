@@ -1,12 +1,16 @@
 package com.ai.pdfchat.service;
 
 import com.ai.pdfchat.client.OllamaClient;
+import com.ai.pdfchat.config.IngestProperties;
 import com.ai.pdfchat.model.DocumentChunk;
+import com.ai.pdfchat.model.EmbeddingModel;
 import com.ai.pdfchat.repo.DocumentChunkRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
@@ -14,66 +18,87 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Service
 public class PdfIngestService {
 
+    public static final String DEFAULT_TENANT = "default";
+
     private final DocumentChunkRepository repo;
     private final JdbcTemplate jdbc;
     private final OllamaClient ollama;
+    private final EmbeddingModelRegistry registry;
     private final ObjectMapper mapper = new ObjectMapper();
 
 
     private final int chunkSize = 800; // you can inject via properties
     private final int chunkOverlap = 150;
 
+    private final int pagesPerRange;
+    private final int extractThreads;
+    private final ExecutorService extractPool;
+
 
-    public PdfIngestService(DocumentChunkRepository repo, JdbcTemplate jdbc, OllamaClient ollama) {
+    public PdfIngestService(DocumentChunkRepository repo, JdbcTemplate jdbc, OllamaClient ollama,
+                            EmbeddingModelRegistry registry, IngestProperties ingestProps) {
         this.repo = repo;
         this.jdbc = jdbc;
         this.ollama = ollama;
+        this.registry = registry;
+        this.pagesPerRange = Math.max(1, ingestProps.getPagesPerRange());
+        this.extractThreads = Math.max(1, ingestProps.getExtractThreads());
+        AtomicInteger threadNo = new AtomicInteger();
+        this.extractPool = Executors.newFixedThreadPool(extractThreads, r -> {
+            Thread t = new Thread(r, "pdf-extract-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
     }
 
 
-    // ingest method (instrumented)
-    public void ingest(MultipartFile file) throws IOException {
-        String text = extractText(file);
-        List<String> chunks = chunkText(text, chunkSize, chunkOverlap);
+    // ingest method (instrumented); returns the id of the new document
+    public String ingest(MultipartFile file, String tenantId) throws IOException {
+        String tenant = (tenantId == null || tenantId.isBlank()) ? DEFAULT_TENANT : tenantId;
+        String documentId = UUID.randomUUID().toString();
+        List<TextChunk> chunks = chunkPages(extractPages(file), chunkSize, chunkOverlap);
+        List<EmbeddingModel> targets = registry.writeTargets();
+        if (targets.isEmpty()) {
+            log.warn("No embedding model registered; chunks of {} will be stored without embeddings", file.getOriginalFilename());
+        }
 
         for (int i = 0; i < chunks.size(); i++) {
-            String chunk = chunks.get(i);
+            TextChunk tc = chunks.get(i);
+            String chunk = tc.text();
             log.info("Processing chunk #{} (len={})", i, chunk == null ? 0 : chunk.length());
 
-            // 1) get embedding from Ollama (with single retry)
-            List<Double> emb = null;
-            try {
-                emb = ollama.embed(chunk);
-                if (emb == null || emb.isEmpty()) {
-                    log.warn("First embed attempt returned null/empty for chunk {}", i);
-                    emb = ollama.embed(chunk); // retry once
-                }
-            } catch (Exception e) {
-                log.error("Exception while calling ollama.embed for chunk {}: {}", i, e.getMessage(), e);
-            }
-
-            log.info("Embedding result for chunk {}: {}", i, emb == null ? "null" : ("size=" + emb.size()));
-
-            // 2) save entity WITHOUT metadata/embedding
+            // 1) save entity WITHOUT metadata/embedding
             DocumentChunk dc = new DocumentChunk();
             dc.setSourceFilename(file.getOriginalFilename());
             dc.setChunkIndex(i);
+            dc.setTenantId(tenant);
+            dc.setDocumentId(documentId);
             dc.setContent(chunk);
             dc = repo.save(dc);
             log.info("Saved DocumentChunk id={}", dc.getId());
 
-            // 3) save metadata (always)
-            String metadataJson = mapper.writeValueAsString(Map.of("source", file.getOriginalFilename(), "chunkIndex", i));
+            // 2) save metadata (always)
+            String metadataJson = mapper.writeValueAsString(Map.of(
+                    "source", file.getOriginalFilename(),
+                    "chunkIndex", i,
+                    "pageStart", tc.pageStart(),
+                    "pageEnd", tc.pageEnd()));
             try {
                 saveMetadata(dc.getId(), metadataJson);
                 log.info("Saved metadata for id={}", dc.getId());
@@ -81,47 +106,40 @@ public class PdfIngestService {
                 log.error("Failed to save metadata for id={}: {}", dc.getId(), e.getMessage(), e);
             }
 
-            // 4) save embedding if available
-            if (emb == null || emb.isEmpty()) {
-                log.warn("Embedding is missing for id={} chunk={} — skipping embedding update", dc.getId(), i);
-                continue;
-            }
-
-            try {
-                int updated = saveEmbedding(dc.getId(), emb);
-                log.info("saveEmbedding returned updatedCount={} for id={}", updated, dc.getId());
-                if (updated == 0) {
-                    log.warn("Embedding update affected 0 rows for id={}", dc.getId());
+            // 3) embed with every model that needs vectors: the active one and, while a
+            //    re-embed is running, the model being backfilled (so it never falls behind)
+            for (EmbeddingModel target : targets) {
+                // get embedding from Ollama (with single retry)
+                float[] emb = null;
+                try {
+                    emb = ollama.embed(chunk, target.getModel());
+                    if (emb == null || emb.length == 0) {
+                        log.warn("First embed attempt with {} returned null/empty for chunk {}", target.getModel(), i);
+                        emb = ollama.embed(chunk, target.getModel()); // retry once
+                    }
+                } catch (Exception e) {
+                    log.error("Exception while calling ollama.embed for chunk {}: {}", i, e.getMessage(), e);
                 }
-            } catch (Exception e) {
-                log.error("Failed to save embedding for id={}: {}", dc.getId(), e.getMessage(), e);
-            }
-        }
-    }
 
-    /** returns rows updated */
-    private int saveEmbedding(Long chunkId, List<Double> embedding) {
-        if (embedding == null || embedding.isEmpty()) return 0;
+                log.info("Embedding result ({}) for chunk {}: {}", target.getModel(), i, emb == null ? "null" : ("size=" + emb.length));
+
+                if (emb == null || emb.length == 0) {
+                    log.warn("Embedding is missing for id={} chunk={} model={} — skipping embedding update", dc.getId(), i, target.getModel());
+                    continue;
+                }
 
-        // validate elements (no NaN/Infinity/null)
-        for (Double d : embedding) {
-            if (d == null || d.isNaN() || d.isInfinite()) {
-                throw new IllegalArgumentException("Embedding contains invalid value (null/NaN/Infinite)");
+                try {
+                    int updated = registry.saveEmbedding(target, dc.getId(), tenant, documentId, emb);
+                    log.info("saveEmbedding returned updatedCount={} for id={}", updated, dc.getId());
+                    if (updated == 0) {
+                        log.warn("Embedding update affected 0 rows for id={}", dc.getId());
+                    }
+                } catch (Exception e) {
+                    log.error("Failed to save embedding for id={}: {}", dc.getId(), e.getMessage(), e);
+                }
             }
         }
-
-        String embLiteral = "[" + embedding.stream()
-                .map(d -> {
-                    // ensure consistent decimal separator
-                    return String.format(Locale.US, "%.12f", d);
-                })
-                .collect(Collectors.joining(",")) + "]";
-
-        log.debug("Embedding literal for id {} preview: {}", chunkId, embLiteral.length() > 200 ? embLiteral.substring(0,200) + "..." : embLiteral);
-
-        String sql = "UPDATE document_chunks SET embedding = ?::vector WHERE id = ?";
-        // returns number of rows updated
-        return jdbc.update(sql, embLiteral, chunkId);
+        return documentId;
     }
 
     // metadata helper
@@ -131,28 +149,138 @@ public class PdfIngestService {
     }
 
 
-    private String extractText(MultipartFile file) throws IOException {
-        try (InputStream is = file.getInputStream();
-             PDDocument doc = Loader.loadPDF(is.readAllBytes())) {
-            PDFTextStripper stripper = new PDFTextStripper();
-            return stripper.getText(doc);
+    /**
+     * Returns the text of every page, in page order. Large documents are split into at most
+     * {@code extractThreads} contiguous page ranges of at least {@code pagesPerRange} pages that
+     * are extracted concurrently. The request thread extracts the first range from the document
+     * it already loaded; every other worker loads its own copy, since PDFBox documents are not
+     * thread-safe.
+     */
+    private List<String> extractPages(MultipartFile file) throws IOException {
+        byte[] bytes;
+        try (InputStream is = file.getInputStream()) {
+            bytes = is.readAllBytes();
+        }
+
+        try (PDDocument doc = Loader.loadPDF(bytes)) {
+            int pageCount = doc.getNumberOfPages();
+            int rangeCount = Math.max(1, Math.min(extractThreads, pageCount / pagesPerRange));
+            if (rangeCount == 1) {
+                return extractPageRange(doc, 1, pageCount);
+            }
+
+            int rangeSize = (pageCount + rangeCount - 1) / rangeCount;
+            List<Future<List<String>>> ranges = new ArrayList<>();
+            for (int start = 1 + rangeSize; start <= pageCount; start += rangeSize) {
+                int first = start;
+                int last = Math.min(pageCount, start + rangeSize - 1);
+                ranges.add(extractPool.submit(() -> {
+                    try (PDDocument copy = Loader.loadPDF(bytes)) {
+                        return extractPageRange(copy, first, last);
+                    }
+                }));
+            }
+            log.info("Extracting {} pages of {} in {} ranges", pageCount, file.getOriginalFilename(), ranges.size() + 1);
+
+            List<String> pages = new ArrayList<>(pageCount);
+            try {
+                pages.addAll(extractPageRange(doc, 1, rangeSize));
+                for (Future<List<String>> range : ranges) {
+                    pages.addAll(range.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ranges.forEach(f -> f.cancel(true));
+                throw new IOException("Interrupted while extracting text", e);
+            } catch (ExecutionException e) {
+                ranges.forEach(f -> f.cancel(true));
+                if (e.getCause() instanceof IOException io) throw io;
+                throw new IOException("Failed to extract text: " + e.getCause().getMessage(), e.getCause());
+            } catch (IOException | RuntimeException e) {
+                ranges.forEach(f -> f.cancel(true));
+                throw e;
+            }
+            return pages;
         }
     }
 
+    /**
+     * Extracts pages {@code firstPage..lastPage} in a single pass over the document and splits
+     * the output at the page boundaries the stripper reports.
+     */
+    private List<String> extractPageRange(PDDocument doc, int firstPage, int lastPage) throws IOException {
+        String[] pages = new String[lastPage - firstPage + 1];
+        StringWriter out = new StringWriter();
+        PDFTextStripper stripper = new PDFTextStripper() {
+            private int pageStart;
+
+            @Override
+            protected void startPage(PDPage page) throws IOException {
+                super.startPage(page);
+                pageStart = out.getBuffer().length();
+            }
+
+            @Override
+            protected void endPage(PDPage page) throws IOException {
+                super.endPage(page);
+                pages[getCurrentPageNo() - firstPage] = out.getBuffer().substring(pageStart);
+            }
+        };
+        stripper.setStartPage(firstPage);
+        stripper.setEndPage(lastPage);
+        stripper.writeText(doc, out);
 
-    private List<String> chunkText(String text, int chunkSize, int overlap) {
-        List<String> chunks = new ArrayList<>();
+        List<String> texts = new ArrayList<>(pages.length);
+        for (String page : pages) texts.add(page == null ? "" : page);
+        return texts;
+    }
+
+
+    /** Chunks the concatenated page texts, remembering which (1-based) pages each chunk spans. */
+    static List<TextChunk> chunkPages(List<String> pages, int chunkSize, int overlap) {
+        StringBuilder sb = new StringBuilder();
+        int[] pageOffsets = new int[pages.size()];
+        for (int p = 0; p < pages.size(); p++) {
+            pageOffsets[p] = sb.length();
+            sb.append(pages.get(p));
+        }
+        String text = sb.toString();
+
+        List<TextChunk> chunks = new ArrayList<>();
         int start = 0;
         while (start < text.length()) {
             int end = Math.min(text.length(), start + chunkSize);
-            String c = text.substring(start, end).trim();
-            if (!c.isEmpty()) chunks.add(c);
+            // same bounds as String.trim(), so page numbers describe the text actually stored
+            int first = start;
+            int last = end;
+            while (first < last && text.charAt(first) <= ' ') first++;
+            while (last > first && text.charAt(last - 1) <= ' ') last--;
+            if (first < last) {
+                chunks.add(new TextChunk(text.substring(first, last), pageAt(pageOffsets, first), pageAt(pageOffsets, last - 1)));
+            }
             if (end == text.length()) break;
             start = Math.max(0, end - overlap);
         }
         return chunks;
     }
 
+    static int pageAt(int[] pageOffsets, int offset) {
+        int idx = Arrays.binarySearch(pageOffsets, offset);
+        // exact hits can repeat for empty pages; take the last page starting at this offset
+        if (idx >= 0) {
+            while (idx + 1 < pageOffsets.length && pageOffsets[idx + 1] == offset) idx++;
+            return idx + 1;
+        }
+        return -idx - 1; // insertion point is the next page's index, i.e. this page's 1-based number
+    }
+
+    record TextChunk(String text, int pageStart, int pageEnd) {}
+
+    @PreDestroy
+    void shutdownExtractPool() {
+        extractPool.shutdownNow();
+    }
+
 
 //    private void saveEmbedding(Long chunkId, List<Double> embedding) {
 //        if (embedding == null || embedding.isEmpty()) {
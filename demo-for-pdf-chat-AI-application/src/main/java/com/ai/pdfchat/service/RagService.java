@@ -1,52 +1,127 @@
 package com.ai.pdfchat.service;
 
 import com.ai.pdfchat.client.OllamaClient;
+import com.ai.pdfchat.config.SearchProperties;
+import com.ai.pdfchat.model.EmbeddingModel;
+import com.ai.pdfchat.model.FloatArrayToVectorConverter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class RagService {
     private final JdbcTemplate jdbc;
     private final OllamaClient ollama;
+    private final EmbeddingModelRegistry registry;
+    private final SearchProperties searchProps;
+    private final TransactionTemplate tx;
     private final ObjectMapper mapper = new ObjectMapper();
+    private final FloatArrayToVectorConverter vectors = new FloatArrayToVectorConverter();
     private final int topK = 6;
 
 
-    public RagService(JdbcTemplate jdbc, OllamaClient ollama) {
+    public RagService(JdbcTemplate jdbc, OllamaClient ollama, EmbeddingModelRegistry registry,
+                      SearchProperties searchProps, PlatformTransactionManager txManager) {
         this.jdbc = jdbc;
         this.ollama = ollama;
+        this.registry = registry;
+        this.searchProps = searchProps;
+        this.tx = new TransactionTemplate(txManager);
     }
 
 
-    public List<Map<String, Object>> similaritySearch(List<Double> qEmbedding, int topK) {
-        String embLiteral = "[" + qEmbedding.stream().map(Object::toString).collect(Collectors.joining(",")) + "]";
-        String sql = "SELECT id, content, metadata FROM document_chunks ORDER BY embedding <-> (?::vector) LIMIT ?";
+    /**
+     * Searches the vector table of {@code model}; the query embedding must come from the same model.
+     * Distances use {@code <=>} (cosine) to match the vector_cosine_ops ivfflat indexes.
+     *
+     * A tenant filter is on the partition key, so Postgres prunes to that tenant's partition and
+     * its own ANN index. A hash partition is still shared by several tenants, so the index scan
+     * runs with pgvector's iterative scan ({@code ivfflat.iterative_scan = relaxed_order}, from
+     * {@code rag.search.probes} up to {@code rag.search.max-probes} lists): it keeps probing until
+     * top-k rows of this tenant are found instead of filtering a fixed set of probes. Relaxed
+     * order can return rows slightly out of order, so hits are re-sorted by distance.
+     *
+     * A document filter selects that document's vectors first (btree on document_id) and ranks
+     * them exactly, instead of post-filtering a global top-k.
+     */
+    public List<Map<String, Object>> similaritySearch(EmbeddingModel model, float[] qEmbedding, int topK,
+                                                      String tenantId, List<String> documentIds) {
+        String embLiteral = vectors.convertToDatabaseColumn(qEmbedding);
+        String table = model.getTableName();
+
+        boolean scopedToTenant = tenantId != null && !tenantId.isBlank();
+        boolean scopedToDocuments = documentIds != null && !documentIds.isEmpty();
+
+        if (scopedToDocuments) {
+            List<Object> args = new ArrayList<>();
+            String filter = " WHERE e.document_id IN (" + String.join(",", Collections.nCopies(documentIds.size(), "?")) + ")";
+            args.addAll(documentIds);
+            if (scopedToTenant) {
+                filter += " AND e.tenant_id = ?";
+                args.add(tenantId);
+            }
+            args.add(embLiteral);
+            args.add(topK);
+            String sql = "WITH scoped AS MATERIALIZED (SELECT e.chunk_id, e.embedding FROM " + table + " e" + filter + ") "
+                    + "SELECT c.id, c.content, c.metadata FROM scoped s "
+                    + "JOIN document_chunks c ON c.id = s.chunk_id "
+                    + "ORDER BY s.embedding <=> (?::vector) LIMIT ?";
+            return jdbc.queryForList(sql, args.toArray());
+        }
+
+        if (scopedToTenant) {
+            String sql = "WITH hits AS MATERIALIZED ("
+                    + "SELECT e.chunk_id, e.embedding <=> (?::vector) AS distance FROM " + table + " e "
+                    + "WHERE e.tenant_id = ? ORDER BY distance LIMIT ?) "
+                    + "SELECT c.id, c.content, c.metadata FROM hits h "
+                    + "JOIN document_chunks c ON c.id = h.chunk_id "
+                    + "ORDER BY h.distance";
+            // SET LOCAL needs a transaction, and must share its connection with the query
+            return tx.execute(status -> {
+                jdbc.execute("SET LOCAL ivfflat.iterative_scan = relaxed_order");
+                jdbc.execute("SET LOCAL ivfflat.probes = " + searchProps.getProbes());
+                jdbc.execute("SET LOCAL ivfflat.max_probes = " + searchProps.getMaxProbes());
+                return jdbc.queryForList(sql, embLiteral, tenantId, topK);
+            });
+        }
+
+        String sql = "SELECT c.id, c.content, c.metadata FROM " + table + " e "
+                + "JOIN document_chunks c ON c.id = e.chunk_id "
+                + "ORDER BY e.embedding <=> (?::vector) LIMIT ?";
         return jdbc.queryForList(sql, embLiteral, topK);
     }
 
 
-    public String answerQuestion(String question) {
+    public String answerQuestion(String question, String tenantId, List<String> documentIds) {
         if (question == null || question.isBlank()) {
             throw new IllegalArgumentException("question must not be null or blank");
         }
 
+        // Resolve the model once so query embedding and search always agree, even mid switch-over
+        EmbeddingModel model = registry.active();
+        if (model == null) {
+            throw new IllegalStateException("No active embedding model registered");
+        }
+
         // Try to get embedding, with a small retry logic
-        List<Double> qEmb = embedWithRetry(question, 2);
-        log.debug("embed() result size={} resp={}", qEmb==null?0:qEmb.size(), qEmb);
-        if (qEmb == null || qEmb.isEmpty()) {
+        float[] qEmb = embedWithRetry(question, model.getModel(), 2);
+        log.debug("embed() result size={}", qEmb==null?0:qEmb.length);
+        if (qEmb == null || qEmb.length == 0) {
             // clear, user-friendly error which your controller already maps to 503
             throw new IllegalStateException("Failed to generate query embedding from Ollama");
         }
 
         // similaritySearch should handle empty results gracefully
-        List<Map<String, Object>> chunks = similaritySearch(qEmb, topK);
+        List<Map<String, Object>> chunks = similaritySearch(model, qEmb, topK, tenantId, documentIds);
         if (chunks == null || chunks.isEmpty()) {
             // optional: return a polite reply rather than ask the LLM with no context
             return "I couldn't find any relevant document excerpts to answer that.";
@@ -57,13 +132,13 @@ public class RagService {
         return answer == null ? "" : answer;
     }
 
-    public List<Double> embedWithRetry(String text, int maxAttempts) {
+    public float[] embedWithRetry(String text, String model, int maxAttempts) {
         int attempt = 0;
         while (attempt < maxAttempts) {
             attempt++;
             try {
-                List<Double> emb = ollama.embed(text); // call your existing embed() implementation
-                if (emb != null && !emb.isEmpty()) {
+                float[] emb = ollama.embed(text, model);
+                if (emb != null && emb.length > 0) {
                     return emb;
                 }
                 log.warn("Ollama.embed returned empty on attempt {}", attempt);
@@ -0,0 +1,181 @@
+package com.ai.pdfchat.service;
+
+import com.ai.pdfchat.client.OllamaClient;
+import com.ai.pdfchat.config.ReembedProperties;
+import com.ai.pdfchat.model.EmbeddingModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Background re-embedding after a change of {@code ollama.embed-model}.
+ *
+ * The new model is registered as BACKFILLING next to the active one. Chunks are then walked
+ * in id order, a batch per tick, at no more than {@code rag.reembed.max-embeds-per-second}.
+ * Progress is stored in embedding_models.last_chunk_id so a restart resumes where it stopped.
+ * Search keeps using the old model until every chunk has a vector and the new index is built,
+ * then switches in one transaction. A chunk the new model cannot embed is recorded in
+ * embedding_failures and skipped; it is retried on later passes up to
+ * {@code rag.reembed.max-attempts} times and then logged and left out of the switch-over.
+ */
+@Slf4j
+@Service
+public class ReembedService {
+
+    private final EmbeddingModelRegistry registry;
+    private final OllamaClient ollama;
+    private final ReembedProperties props;
+    private volatile boolean registered;
+
+    public ReembedService(EmbeddingModelRegistry registry, OllamaClient ollama, ReembedProperties props) {
+        this.registry = registry;
+        this.ollama = ollama;
+        this.props = props;
+    }
+
+    /** Runs at startup and, until it succeeds (e.g. Ollama was down), again on every tick. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void registerConfiguredModel() {
+        String target = ollama.getEmbedModel();
+        try {
+            EmbeddingModel known = registry.find(target);
+            EmbeddingModel pending = registry.backfilling();
+
+            if (known != null && EmbeddingModel.ACTIVE.equals(known.getStatus())) {
+                // reverted to the live model before a switch finished: drop the unwanted backfill
+                if (pending != null) {
+                    registry.cancelBackfill(pending.getModel());
+                    log.info("Embedding model {} is configured again; cancelled backfill of {}", target, pending.getModel());
+                }
+                registered = true;
+                return;
+            }
+            if (known != null && EmbeddingModel.BACKFILLING.equals(known.getStatus())) {
+                registered = true;
+                return;
+            }
+
+            int dimension;
+            if (known != null) {
+                dimension = known.getDimension();
+            } else {
+                // the vector table needs the dimension up front, so ask the model once
+                float[] probe = ollama.embed("dimension probe", target);
+                if (probe == null || probe.length == 0) {
+                    log.error("Could not determine dimension of embedding model {}; will retry", target);
+                    return;
+                }
+                dimension = probe.length;
+            }
+
+            EmbeddingModel current = registry.active();
+
+            // only the configured model is worth backfilling; one configured earlier is superseded
+            if (pending != null) {
+                registry.cancelBackfill(pending.getModel());
+                log.info("Cancelled backfill of {}, superseded by configured model {}", pending.getModel(), target);
+            }
+            if (known != null) {
+                // switching back to a retired model: only chunks ingested since need vectors
+                registry.restartBackfill(target);
+                log.info("Embedding model {} re-enabled; backfilling chunks it has not seen", target);
+            } else {
+                // even with no model active yet, existing chunks are embedded and indexed before search uses it
+                registry.register(target, dimension, EmbeddingModel.BACKFILLING);
+                log.info("Embedding model changed from {} to {}; background re-embedding scheduled",
+                        current != null ? current.getModel() : "none", target);
+            }
+            registered = true;
+        } catch (Exception e) {
+            log.error("Failed to register embedding model {}: {}", target, e.getMessage(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${rag.reembed.interval-ms:5000}")
+    public void reembedBatch() {
+        if (!registered) registerConfiguredModel();
+        if (!props.isEnabled()) return;
+
+        EmbeddingModel model = registry.backfilling();
+        if (model == null) return;
+
+        List<Map<String, Object>> batch = registry.pendingChunks(model, props.getBatchSize(), props.getMaxAttempts());
+        if (batch.isEmpty()) {
+            if (registry.hasMissingVectors(model, props.getMaxAttempts())) {
+                // a chunk behind the cursor has no vector (failed dual-write, or a failed
+                // re-embed with attempts left): rescan from the start
+                log.warn("Chunks behind the cursor lack {} vectors; rescanning before switching over", model.getModel());
+                registry.advanceCursor(model.getModel(), 0L);
+                return;
+            }
+            List<Map<String, Object>> failed = registry.permanentFailures(model, props.getMaxAttempts());
+            if (!failed.isEmpty()) {
+                log.error("{} chunks could not be embedded with {} after {} attempts and will not be searchable "
+                                + "with it, see embedding_failures; first: {}", failed.size(), model.getModel(),
+                        props.getMaxAttempts(), failed.subList(0, Math.min(20, failed.size())));
+            }
+            // index once the table is filled, outside the switchover, so writes are never blocked by the build
+            registry.buildIndex(model);
+            try {
+                registry.activate(model.getModel());
+            } catch (IllegalStateException e) {
+                log.warn("Switch-over to {} skipped: {}", model.getModel(), e.getMessage());
+            }
+            return;
+        }
+
+        long minIntervalNanos = props.getMaxEmbedsPerSecond() > 0
+                ? (long) (1_000_000_000L / props.getMaxEmbedsPerSecond())
+                : 0L;
+        long lastId = model.getLastChunkId();
+        int embedded = 0;
+
+        for (Map<String, Object> row : batch) {
+            long started = System.nanoTime();
+            Long id = ((Number) row.get("id")).longValue();
+            String content = (String) row.get("content");
+            String tenantId = (String) row.get("tenant_id");
+            String documentId = (String) row.get("document_id");
+
+            String error = null;
+            float[] emb = ollama.embed(content, model.getModel());
+            if (emb == null || emb.length == 0) {
+                error = "embed request failed or returned no vector";
+            } else {
+                try {
+                    registry.saveEmbedding(model, id, tenantId, documentId, emb);
+                } catch (Exception e) {
+                    error = e.getMessage();
+                }
+            }
+            // move past the chunk either way, so one bad chunk cannot stall the backfill
+            lastId = id;
+            if (error != null) {
+                registry.recordFailure(model.getModel(), id, error);
+                log.warn("Re-embed of chunk {} with {} failed ({}); will retry on a later pass", id, model.getModel(), error);
+                break; // back off until the next tick in case Ollama itself is down
+            }
+            embedded++;
+
+            long remaining = minIntervalNanos - (System.nanoTime() - started);
+            if (remaining > 0) {
+                try {
+                    Thread.sleep(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        if (lastId > model.getLastChunkId()) {
+            registry.advanceCursor(model.getModel(), lastId);
+        }
+        log.info("Re-embedded {} chunks with {} (cursor at id={})", embedded, model.getModel(), lastId);
+    }
+}
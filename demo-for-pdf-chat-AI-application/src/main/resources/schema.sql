@@ -8,11 +8,93 @@ CREATE TABLE IF NOT EXISTS document_chunks (
     chunk_index INT,
     content TEXT,
     metadata JSONB,
-    embedding vector(1024)   -- must match your converter & model embedding dimension
+    embedding vector(1024),  -- legacy column, vectors now live in chunk_embeddings_<model> (see below)
+    tenant_id TEXT NOT NULL DEFAULT 'default',
+    document_id TEXT         -- one id per ingested file, returned by /ingest
 );
 
+ALTER TABLE document_chunks ADD COLUMN IF NOT EXISTS tenant_id TEXT NOT NULL DEFAULT 'default';
+ALTER TABLE document_chunks ADD COLUMN IF NOT EXISTS document_id TEXT;
+
+CREATE INDEX IF NOT EXISTS idx_document_chunks_tenant_document
+ON document_chunks (tenant_id, document_id);
+
 -- Create IVFFlat index for cosine similarity search (requires ANALYZE before use)
 CREATE INDEX IF NOT EXISTS idx_document_chunks_embedding
 ON document_chunks
 USING ivfflat (embedding vector_cosine_ops)
 WITH (lists = 100);
+
+-- Registry of embedding models. Every model keeps its vectors in its own table so a new
+-- model can be backfilled next to the live one and search switched over once it is complete.
+CREATE TABLE IF NOT EXISTS embedding_models (
+    model TEXT PRIMARY KEY,
+    dimension INT NOT NULL,
+    table_name TEXT NOT NULL UNIQUE,
+    status TEXT NOT NULL,                     -- BACKFILLING | ACTIVE | RETIRED
+    last_chunk_id BIGINT NOT NULL DEFAULT 0,  -- re-embed cursor, survives restarts
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+-- Chunks a backfilling model failed to embed (context limit, Ollama 4xx, ...). The cursor moves
+-- past them; they are retried on later passes until attempts reaches rag.reembed.max-attempts.
+CREATE TABLE IF NOT EXISTS embedding_failures (
+    model TEXT NOT NULL REFERENCES embedding_models(model) ON DELETE CASCADE,
+    chunk_id BIGINT NOT NULL REFERENCES document_chunks(id) ON DELETE CASCADE,
+    attempts INT NOT NULL DEFAULT 0,
+    last_error TEXT,
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    PRIMARY KEY (model, chunk_id)
+);
+
+-- At most one model serves search at a time
+CREATE UNIQUE INDEX IF NOT EXISTS ux_embedding_models_active
+ON embedding_models (status)
+WHERE status = 'ACTIVE';
+
+-- Vectors for the initial model, seeded from the legacy column. Vector tables are hash
+-- partitioned on tenant_id so tenant-scoped searches only scan (and index) one partition.
+-- The partition count must match EmbeddingModelRegistry.TENANT_PARTITIONS.
+CREATE TABLE IF NOT EXISTS chunk_embeddings_mxbai_embed_large (
+    chunk_id BIGINT NOT NULL REFERENCES document_chunks(id) ON DELETE CASCADE,
+    tenant_id TEXT NOT NULL,
+    document_id TEXT,
+    embedding vector(1024) NOT NULL,
+    PRIMARY KEY (tenant_id, chunk_id)
+) PARTITION BY HASH (tenant_id);
+
+CREATE TABLE IF NOT EXISTS chunk_embeddings_mxbai_embed_large_p0
+PARTITION OF chunk_embeddings_mxbai_embed_large FOR VALUES WITH (MODULUS 8, REMAINDER 0);
+CREATE TABLE IF NOT EXISTS chunk_embeddings_mxbai_embed_large_p1
+PARTITION OF chunk_embeddings_mxbai_embed_large FOR VALUES WITH (MODULUS 8, REMAINDER 1);
+CREATE TABLE IF NOT EXISTS chunk_embeddings_mxbai_embed_large_p2
+PARTITION OF chunk_embeddings_mxbai_embed_large FOR VALUES WITH (MODULUS 8, REMAINDER 2);
+CREATE TABLE IF NOT EXISTS chunk_embeddings_mxbai_embed_large_p3
+PARTITION OF chunk_embeddings_mxbai_embed_large FOR VALUES WITH (MODULUS 8, REMAINDER 3);
+CREATE TABLE IF NOT EXISTS chunk_embeddings_mxbai_embed_large_p4
+PARTITION OF chunk_embeddings_mxbai_embed_large FOR VALUES WITH (MODULUS 8, REMAINDER 4);
+CREATE TABLE IF NOT EXISTS chunk_embeddings_mxbai_embed_large_p5
+PARTITION OF chunk_embeddings_mxbai_embed_large FOR VALUES WITH (MODULUS 8, REMAINDER 5);
+CREATE TABLE IF NOT EXISTS chunk_embeddings_mxbai_embed_large_p6
+PARTITION OF chunk_embeddings_mxbai_embed_large FOR VALUES WITH (MODULUS 8, REMAINDER 6);
+CREATE TABLE IF NOT EXISTS chunk_embeddings_mxbai_embed_large_p7
+PARTITION OF chunk_embeddings_mxbai_embed_large FOR VALUES WITH (MODULUS 8, REMAINDER 7);
+
+INSERT INTO chunk_embeddings_mxbai_embed_large (chunk_id, tenant_id, document_id, embedding)
+SELECT id, tenant_id, document_id, embedding FROM document_chunks WHERE embedding IS NOT NULL
+ON CONFLICT (tenant_id, chunk_id) DO NOTHING;
+
+-- Created on the partitioned parent, so every partition gets its own index. Searches order by
+-- <=> (cosine distance) to match vector_cosine_ops; tenant-filtered searches rely on
+-- ivfflat.iterative_scan, which needs pgvector >= 0.8.
+CREATE INDEX IF NOT EXISTS idx_chunk_embeddings_mxbai_embed_large
+ON chunk_embeddings_mxbai_embed_large
+USING ivfflat (embedding vector_cosine_ops)
+WITH (lists = 100);
+
+CREATE INDEX IF NOT EXISTS idx_chunk_embeddings_mxbai_embed_large_document
+ON chunk_embeddings_mxbai_embed_large (document_id);
+
+INSERT INTO embedding_models (model, dimension, table_name, status)
+VALUES ('mxbai-embed-large', 1024, 'chunk_embeddings_mxbai_embed_large', 'ACTIVE')
+ON CONFLICT (model) DO NOTHING;
@@ -0,0 +1,48 @@
+package com.ai.pdfchat.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EmbeddingResponseDecoderTest {
+
+	@Test
+	void decodesValuesLikeFloatParseFloat() {
+		// near float midpoints, where rounding to double and then to float goes wrong
+		float[] expected = {Float.parseFloat("1.00000661611557"), Float.parseFloat("1.00001460313797"),
+				Float.parseFloat("-0.012345678"), Float.parseFloat("3e-5"), 7f};
+		assertArrayEquals(expected, decode("{\"embedding\":[1.00000661611557,1.00001460313797,-0.012345678,3e-5,7]}", 16));
+	}
+
+	@Test
+	void decodesSupportedResponseShapesAcrossBufferBoundaries() {
+		float[] expected = {0.5f, -0.25f, 0.012345678f};
+		for (String body : List.of(
+				"{\"embedding\":[0.5,-0.25,0.012345678]}",
+				"{\"model\":\"m\",\"embeddings\":[[0.5,-0.25,0.012345678]],\"total_duration\":12}",
+				"{\"embeddings\":[0.5,-0.25,0.012345678]}",
+				"{\"data\":[{\"index\":0,\"embedding\":[0.5,-0.25,0.012345678]}]}")) {
+			assertArrayEquals(expected, decode(body, 5), body);
+		}
+	}
+
+	@Test
+	void returnsEmptyArrayWhenNoEmbeddingPresent() {
+		assertEquals(0, decode("{\"error\":\"model not found\"}", 64).length);
+	}
+
+	private static float[] decode(String body, int chunkSize) {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		EmbeddingResponseDecoder decoder = new EmbeddingResponseDecoder();
+		for (int off = 0; off < bytes.length; off += chunkSize) {
+			decoder.feed(ByteBuffer.wrap(bytes, off, Math.min(chunkSize, bytes.length - off)));
+		}
+		return decoder.result();
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.ai.pdfchat.service;
+
+import com.ai.pdfchat.service.PdfIngestService.TextChunk;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PdfIngestServiceTest {
+
+	@Test
+	void emptyPagesAreSkippedWhenAttributingPages() {
+		// pages 1, 3 and 4 are empty and start at the same offset as the page after them
+		assertEquals(List.of(new TextChunk("abcdef", 2, 5)),
+				PdfIngestService.chunkPages(List.of("", "abc", "", "", "def"), 800, 150));
+		assertEquals(List.of(), PdfIngestService.chunkPages(List.of("", ""), 800, 150));
+		assertEquals(List.of(), PdfIngestService.chunkPages(List.of(), 800, 150));
+	}
+
+	@Test
+	void pagesDescribeTrimmedText() {
+		// the second chunk starts in page 1's trailing newline but its text is on page 2
+		assertEquals(List.of(
+						new TextChunk("aaaa", 1, 1),
+						new TextChunk("b", 2, 2),
+						new TextChunk("bbb", 2, 2)),
+				PdfIngestService.chunkPages(List.of("aaaa\n", "\n bbbb"), 4, 0));
+		// the first chunk ends in page 2's leading newline but its text is on page 1
+		assertEquals(List.of(
+						new TextChunk("aaaa", 1, 1),
+						new TextChunk("bbbb", 2, 2)),
+				PdfIngestService.chunkPages(List.of("aaaa\n", "\n bbbb"), 6, 0));
+	}
+
+	@Test
+	void chunkSpanningSeveralPagesReportsFirstAndLastPage() {
+		assertEquals(List.of(new TextChunk("abcdef", 1, 3)),
+				PdfIngestService.chunkPages(List.of("ab", "cd", "ef"), 800, 150));
+		assertEquals(List.of(
+						new TextChunk("abcde", 1, 2),
+						new TextChunk("defgh", 2, 3),
+						new TextChunk("ghi", 3, 3)),
+				PdfIngestService.chunkPages(List.of("abc", "def", "ghi"), 5, 2));
+	}
+
+	@Test
+	void pageAtMapsOffsetsToOneBasedPages() {
+		int[] offsets = {0, 0, 3, 3, 3, 7};
+		assertEquals(2, PdfIngestService.pageAt(offsets, 0));
+		assertEquals(2, PdfIngestService.pageAt(offsets, 2));
+		assertEquals(5, PdfIngestService.pageAt(offsets, 3));
+		assertEquals(5, PdfIngestService.pageAt(offsets, 6));
+		assertEquals(6, PdfIngestService.pageAt(offsets, 7));
+		assertEquals(6, PdfIngestService.pageAt(offsets, 100));
+	}
+
+}